@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.changefeed;
+
+import com.azure.cosmos.CosmosAsyncClient;
+import com.azure.cosmos.models.CosmosChangeFeedRequestOptions;
+import com.azure.cosmos.models.FeedRange;
+import com.azure.cosmos.models.FeedResponse;
+import ninckblokje.poc.testcontainers.cosmosdb.model.Starship;
+import ninckblokje.poc.testcontainers.cosmosdb.sharding.StarshipShardMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.stream.Collectors.toList;
+import static reactor.core.publisher.BufferOverflowStrategy.ERROR;
+
+@Component
+@DependsOn("cosmosDBProvisioner")
+public class StarshipChangeFeed {
+
+    private final static Logger logger = LoggerFactory.getLogger(StarshipChangeFeed.class);
+
+    private final CosmosAsyncClient cosmosAsyncClient;
+    private final StarshipShardMap shardMap;
+
+    private final String databaseName;
+    private final Duration pollInterval;
+    private final int subscriberBufferSize;
+
+    // subscribers without demand or no subscribers at all never hold back the reader
+    private final Sinks.Many<Starship> changes = Sinks.many().multicast().directBestEffort();
+
+    private Disposable reader;
+
+    public StarshipChangeFeed(CosmosAsyncClient cosmosAsyncClient, StarshipShardMap shardMap,
+                              @Value("${azure.cosmos.database}") String databaseName,
+                              @Value("${starship.stream.poll-interval:1s}") Duration pollInterval,
+                              @Value("${starship.stream.subscriber-buffer-size:256}") int subscriberBufferSize) {
+        this.cosmosAsyncClient = cosmosAsyncClient;
+        this.shardMap = shardMap;
+        this.databaseName = databaseName;
+        this.pollInterval = pollInterval;
+        this.subscriberBufferSize = subscriberBufferSize;
+    }
+
+    // one change feed reader per container for all subscribers, running from the startup, so a subscriber receives
+    // every change made after it subscribed
+    @PostConstruct
+    public void start() {
+        var startTime = Instant.now();
+        reader = readChangeFeeds(startTime).subscribe(changes::tryEmitNext);
+    }
+
+    @PreDestroy
+    public void stop() {
+        reader.dispose();
+    }
+
+    public Flux<Starship> changes() {
+        // a slow subscriber never holds back the shared reader, when its buffer is full it fails with an overflow
+        // error instead of silently missing changes
+        return changes.asFlux().onBackpressureBuffer(subscriberBufferSize,
+                starship -> logger.warn("Buffer of slow subscriber is full at change of starship {}", starship.getId()),
+                ERROR);
+    }
+
+    private Flux<Starship> readChangeFeeds(Instant startTime) {
+        return Flux.merge(shardMap.getContainerNames().stream()
+                .map(containerName -> readChangeFeed(containerName, startTime))
+                .collect(toList()));
+    }
+
+    private Flux<Starship> readChangeFeed(String containerName, Instant startTime) {
+        logger.info("Starting change feed reader on container {}", containerName);
+
+        var container = cosmosAsyncClient.getDatabase(databaseName).getContainer(containerName);
+        var continuationToken = new AtomicReference<String>();
+
+        return Flux.defer(() -> {
+                    var options = continuationToken.get() == null
+                            ? CosmosChangeFeedRequestOptions.createForProcessingFromPointInTime(startTime, FeedRange.forFullRange())
+                            : CosmosChangeFeedRequestOptions.createForProcessingFromContinuation(continuationToken.get());
+                    return container.queryChangeFeed(options, Starship.class).byPage();
+                })
+                .doOnNext(page -> continuationToken.set(page.getContinuationToken()))
+                .concatMapIterable(FeedResponse::getResults)
+                .repeatWhen(completed -> completed.delayElements(pollInterval))
+                .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, pollInterval)
+                        .doBeforeRetry(signal -> logger.warn("Change feed reader on container {} failed, retrying", containerName, signal.failure())))
+                .doFinally(signal -> logger.info("Stopped change feed reader on container {}", containerName));
+    }
+}
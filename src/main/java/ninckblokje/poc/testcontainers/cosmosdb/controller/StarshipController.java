@@ -26,25 +26,35 @@
 
 package ninckblokje.poc.testcontainers.cosmosdb.controller;
 
+import com.azure.spring.data.cosmos.exception.CosmosAccessException;
+import ninckblokje.poc.testcontainers.cosmosdb.changefeed.StarshipChangeFeed;
 import ninckblokje.poc.testcontainers.cosmosdb.model.Franchise;
 import ninckblokje.poc.testcontainers.cosmosdb.model.Starship;
 import ninckblokje.poc.testcontainers.cosmosdb.repository.StarshipRepository;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.Exceptions;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.validation.Valid;
 
+import static org.springframework.http.HttpHeaders.RETRY_AFTER;
 import static org.springframework.http.HttpStatus.CREATED;
+import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE;
 
 @RestController
 @RequestMapping("/api/starship")
 public class StarshipController {
 
     private final StarshipRepository starshipRepository;
+    private final StarshipChangeFeed starshipChangeFeed;
 
-    public StarshipController(StarshipRepository starshipRepository) {
+    public StarshipController(StarshipRepository starshipRepository, StarshipChangeFeed starshipChangeFeed) {
         this.starshipRepository = starshipRepository;
+        this.starshipChangeFeed = starshipChangeFeed;
     }
 
     @GetMapping
@@ -57,6 +67,13 @@ public class StarshipController {
         return starshipRepository.findAllByFranchise(franchise);
     }
 
+    @GetMapping("/{franchise}/{id}")
+    public Mono<ResponseEntity<Starship>> getStarship(@PathVariable("franchise") Franchise franchise, @PathVariable("id") String id) {
+        return starshipRepository.findById(id, franchise)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
     @PostMapping
     @ResponseStatus(CREATED)
     public Mono<Starship> addStarship(@RequestBody @Valid Starship starship) {
@@ -68,4 +85,39 @@ public class StarshipController {
         return starshipRepository.findAll()
                 .map(Starship::getClassName);
     }
+
+    @GetMapping(path = "/stream", produces = TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Starship>> streamStarships() {
+        // the changes are subscribed to before the current state is read, so nothing is missed in between, a change
+        // made while reading can be sent both as snapshot and as change
+        var snapshot = starshipRepository.findAll().map(starship -> toEvent("snapshot", starship));
+        var changes = starshipChangeFeed.changes().map(starship -> toEvent("change", starship));
+
+        // a client too slow to keep up gets a resync event and the stream ends, so it reconnects for a new snapshot
+        return Flux.mergeSequential(snapshot, changes)
+                .onErrorResume(Exceptions::isOverflow, ex -> Mono.just(ServerSentEvent.<Starship>builder()
+                        .event("resync")
+                        .build()));
+    }
+
+    @ExceptionHandler(CosmosAccessException.class)
+    public Mono<ResponseEntity<Void>> handleCosmosAccessException(CosmosAccessException ex) {
+        var cosmosException = ex.getCosmosException();
+        if (cosmosException == null || cosmosException.getStatusCode() != TOO_MANY_REQUESTS.value()) {
+            return Mono.error(ex);
+        }
+
+        // let clients back off when Cosmos DB keeps throttling after the SDK retries
+        var retryAfter = Math.max(1, (cosmosException.getRetryAfterDuration().toMillis() + 999) / 1000);
+        return Mono.just(ResponseEntity.status(TOO_MANY_REQUESTS)
+                .header(RETRY_AFTER, String.valueOf(retryAfter))
+                .build());
+    }
+
+    private ServerSentEvent<Starship> toEvent(String event, Starship starship) {
+        return ServerSentEvent.builder(starship)
+                .id(starship.getId())
+                .event(event)
+                .build();
+    }
 }
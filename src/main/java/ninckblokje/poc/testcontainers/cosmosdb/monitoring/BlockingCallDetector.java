@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.monitoring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.blockhound.BlockHound;
+import reactor.blockhound.BlockingOperationError;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.UUID;
+
+@Component
+public class BlockingCallDetector {
+
+    private final static Logger logger = LoggerFactory.getLogger(BlockingCallDetector.class);
+
+    private final Mode mode;
+    private final List<String> allowedMethods;
+
+    public BlockingCallDetector(@Value("${starship.blocking-detection.mode:off}") Mode mode,
+                                @Value("${starship.blocking-detection.allowed-methods:}") List<String> allowedMethods) {
+        this.mode = mode;
+        this.allowedMethods = allowedMethods;
+    }
+
+    @PostConstruct
+    public void postConstruct() {
+        if (mode == Mode.OFF) {
+            return;
+        }
+
+        logger.warn("Detecting blocking calls on non-blocking threads, mode {}", mode);
+
+        // install(...) also applies the integrations found on the classpath, like the one marking Reactor's non-blocking threads
+        BlockHound.install(builder -> {
+            // generating ids for new starships reads from SecureRandom, which only blocks while seeding
+            builder.allowBlockingCallsInside(UUID.class.getName(), "randomUUID");
+            // the validator locks its metadata cache while it is filled on the first validation of a class
+            builder.allowBlockingCallsInside("org.hibernate.validator.internal.metadata.BeanMetaDataManagerImpl", "getBeanMetaData");
+            for (var allowedMethod : allowedMethods) {
+                var parts = allowedMethod.split("#");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException(String.format("Invalid allowed method '%s', expected <class>#<method>", allowedMethod));
+                }
+                builder.allowBlockingCallsInside(parts[0], parts[1]);
+            }
+
+            if (mode == Mode.REPORT) {
+                builder.blockingMethodCallback(method ->
+                        logger.error("Blocking call {} on thread {}", method, Thread.currentThread().getName(), new BlockingOperationError(method)));
+            }
+        });
+    }
+
+    public enum Mode {
+
+        OFF, REPORT, FAIL
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.monitoring;
+
+import com.azure.cosmos.BridgeInternal;
+import com.azure.cosmos.CosmosException;
+import com.azure.cosmos.models.FeedResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import static java.util.Comparator.comparingDouble;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
+
+@Component
+public class QueryCostAnalyzer {
+
+    public static final String CROSS_PARTITION = "(cross-partition)";
+    public static final String OTHER = "(other)";
+
+    private static final Pattern stringLiteral = Pattern.compile("'(?:[^']|'')*'|\"(?:[^\"]|\"\")*\"");
+    private static final Pattern numberLiteral = Pattern.compile("(?<![\\w@])\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern whitespace = Pattern.compile("\\s+");
+
+    private static final Recording DISABLED = new Recording();
+
+    private final boolean enabled;
+    private final boolean queryMetrics;
+    private final int maxTrackedKeys;
+
+    private final Map<String, CostStats> partitions = new ConcurrentHashMap<>();
+    private final Map<String, CostStats> queryShapes = new ConcurrentHashMap<>();
+    private volatile Instant since = Instant.now();
+
+    public QueryCostAnalyzer(@Value("${starship.query-cost.enabled:false}") boolean enabled,
+                             @Value("${starship.query-cost.query-metrics:false}") boolean queryMetrics,
+                             @Value("${starship.query-cost.max-tracked-keys:1000}") int maxTrackedKeys) {
+        this.enabled = enabled;
+        this.queryMetrics = queryMetrics;
+        this.maxTrackedKeys = maxTrackedKeys;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // query metrics are computed by Cosmos DB for every query and make the responses larger, so they are opt-in as well
+    public boolean isQueryMetricsEnabled() {
+        return enabled && queryMetrics;
+    }
+
+    // partitionKey is null for a cross-partition query
+    public Recording startQuery(String queryText, String partitionKey) {
+        if (!enabled) {
+            return DISABLED;
+        }
+        return new CostRecording(normalize(queryText), partitionKey == null ? CROSS_PARTITION : partitionKey);
+    }
+
+    public Recording startOperation(String operation, String partitionKey) {
+        if (!enabled) {
+            return DISABLED;
+        }
+        return new CostRecording(operation, partitionKey);
+    }
+
+    public Map<String, Object> report(int top) {
+        if (top < 0) {
+            throw new IllegalArgumentException(String.format("Invalid top %d, must not be negative", top));
+        }
+
+        var seconds = Math.max(1, Duration.between(since, Instant.now()).toSeconds());
+
+        var report = new LinkedHashMap<String, Object>();
+        report.put("since", since.toString());
+        report.put("partitions", topByRequestCharge(partitions, top, seconds));
+        report.put("queryShapes", topByRequestCharge(queryShapes, top, seconds));
+        return report;
+    }
+
+    public void reset() {
+        partitions.clear();
+        queryShapes.clear();
+        since = Instant.now();
+    }
+
+    static String normalize(String queryText) {
+        var normalized = stringLiteral.matcher(queryText).replaceAll("?");
+        normalized = numberLiteral.matcher(normalized).replaceAll("?");
+        return whitespace.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    private CostStats statsOf(Map<String, CostStats> stats, String key) {
+        var existing = stats.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        // keeps the memory bounded when there are many partition keys or query shapes
+        return stats.computeIfAbsent(stats.size() < maxTrackedKeys ? key : OTHER, k -> new CostStats());
+    }
+
+    private Map<String, Map<String, Object>> topByRequestCharge(Map<String, CostStats> stats, int top, long seconds) {
+        // the stats keep changing while sorting, so sort a snapshot of them
+        var snapshots = stats.entrySet().stream()
+                .map(entry -> Map.entry(entry.getKey(), entry.getValue().toMap(seconds)))
+                .collect(toList());
+
+        return snapshots.stream()
+                .sorted(comparingDouble((Map.Entry<String, Map<String, Object>> entry) -> (double) entry.getValue().get("requestCharge")).reversed())
+                .limit(top)
+                .collect(toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> a, LinkedHashMap::new));
+    }
+
+    // records a single request, complete() is called when it ended in any way, so failed and cancelled requests count as well;
+    // records nothing when the analyzer is disabled
+    public static class Recording {
+
+        public void response(double requestCharge) {
+        }
+
+        public void page(FeedResponse<?> page) {
+        }
+
+        public void error(Throwable throwable) {
+        }
+
+        public void complete() {
+        }
+    }
+
+    private class CostRecording extends Recording {
+
+        private final String queryShape;
+        private final String partitionKey;
+
+        private double requestCharge;
+        private long returnedDocuments;
+        private long retrievedDocuments;
+        private long indexHitDocuments;
+        private boolean hasQueryMetrics;
+        private boolean throttled;
+
+        private CostRecording(String queryShape, String partitionKey) {
+            this.queryShape = queryShape;
+            this.partitionKey = partitionKey;
+        }
+
+        @Override
+        public void response(double requestCharge) {
+            this.requestCharge += requestCharge;
+        }
+
+        @Override
+        public void page(FeedResponse<?> page) {
+            requestCharge += page.getRequestCharge();
+            returnedDocuments += page.getResults().size();
+
+            // the 4.x SDK only exposes the query metrics through its bridge
+            var queryMetrics = BridgeInternal.queryMetricsFromFeedResponse(page);
+            if (queryMetrics != null) {
+                for (var metrics : queryMetrics.values()) {
+                    hasQueryMetrics = true;
+                    retrievedDocuments += metrics.getRetrievedDocumentCount();
+                    indexHitDocuments += metrics.getIndexHitDocumentCount();
+                }
+            }
+        }
+
+        @Override
+        public void error(Throwable throwable) {
+            if (!(throwable instanceof CosmosException)) {
+                return;
+            }
+
+            // throttling which is still there after the retries of the SDK is the clearest sign of a hot partition
+            var cosmosException = (CosmosException) throwable;
+            requestCharge += cosmosException.getRequestCharge();
+            throttled = cosmosException.getStatusCode() == TOO_MANY_REQUESTS.value();
+        }
+
+        @Override
+        public void complete() {
+            for (var stats : new CostStats[]{statsOf(partitions, partitionKey), statsOf(queryShapes, queryShape)}) {
+                stats.requests.increment();
+                stats.requestCharge.add(requestCharge);
+                if (throttled) {
+                    stats.throttledRequests.increment();
+                }
+                stats.returnedDocuments.add(returnedDocuments);
+                if (hasQueryMetrics) {
+                    stats.queriesWithMetrics.increment();
+                    stats.retrievedDocuments.add(retrievedDocuments);
+                    stats.indexHitDocuments.add(indexHitDocuments);
+                }
+            }
+        }
+    }
+
+    private static class CostStats {
+
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder throttledRequests = new LongAdder();
+        private final DoubleAdder requestCharge = new DoubleAdder();
+        private final LongAdder returnedDocuments = new LongAdder();
+        private final LongAdder queriesWithMetrics = new LongAdder();
+        private final LongAdder retrievedDocuments = new LongAdder();
+        private final LongAdder indexHitDocuments = new LongAdder();
+
+        private Map<String, Object> toMap(long seconds) {
+            var requestCount = requests.sum();
+            var charge = requestCharge.sum();
+            var retrieved = retrievedDocuments.sum();
+            var returned = returnedDocuments.sum();
+
+            var map = new LinkedHashMap<String, Object>();
+            map.put("requests", requestCount);
+            map.put("requestsPerSecond", (double) requestCount / seconds);
+            map.put("throttledRequests", throttledRequests.sum());
+            map.put("requestCharge", charge);
+            map.put("requestChargePerRequest", requestCount == 0 ? 0 : charge / requestCount);
+            map.put("returnedDocuments", returned);
+            if (queriesWithMetrics.sum() > 0) {
+                map.put("retrievedDocuments", retrieved);
+                map.put("retrievedPerReturnedDocument", returned == 0 ? null : (double) retrieved / returned);
+                map.put("indexHitRatio", retrieved == 0 ? null : (double) indexHitDocuments.sum() / retrieved);
+            }
+            return map;
+        }
+    }
+}
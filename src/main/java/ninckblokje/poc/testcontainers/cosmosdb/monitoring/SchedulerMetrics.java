@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.monitoring;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.HttpResources;
+import reactor.netty.resources.LoopResources;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+@Component
+public class SchedulerMetrics {
+
+    private final static Logger logger = LoggerFactory.getLogger(SchedulerMetrics.class);
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final Duration probeInterval;
+
+    private Disposable probes;
+
+    public SchedulerMetrics(MeterRegistry meterRegistry,
+                            @Value("${starship.scheduler-metrics.enabled:true}") boolean enabled,
+                            @Value("${starship.scheduler-metrics.probe-interval:1s}") Duration probeInterval) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.probeInterval = probeInterval;
+    }
+
+    @PostConstruct
+    public void postConstruct() {
+        if (!enabled) {
+            return;
+        }
+
+        // queue depth and active tasks of the Reactor schedulers, published through the global registry
+        Schedulers.enableMetrics();
+
+        var eventLoops = new ArrayList<EventExecutor>();
+        HttpResources.get().onServer(LoopResources.DEFAULT_NATIVE).forEach(eventLoops::add);
+        logger.info("Probing {} event loops every {}", eventLoops.size(), probeInterval);
+
+        var lagTimers = new ArrayList<Timer>();
+        for (var i = 0; i < eventLoops.size(); i++) {
+            var eventLoop = eventLoops.get(i);
+            var name = String.valueOf(i);
+
+            lagTimers.add(Timer.builder("eventloop.lag")
+                    .description("Time a task waits before the event loop runs it")
+                    .tag("eventloop", name)
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry));
+            if (eventLoop instanceof SingleThreadEventExecutor) {
+                Gauge.builder("eventloop.pending.tasks", (SingleThreadEventExecutor) eventLoop, SingleThreadEventExecutor::pendingTasks)
+                        .description("Tasks waiting to be run by the event loop")
+                        .tag("eventloop", name)
+                        .register(meterRegistry);
+            }
+        }
+
+        probes = Flux.interval(probeInterval)
+                .subscribe(tick -> probe(eventLoops, lagTimers));
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        if (probes != null) {
+            probes.dispose();
+        }
+    }
+
+    private void probe(List<EventExecutor> eventLoops, List<Timer> lagTimers) {
+        for (var i = 0; i < eventLoops.size(); i++) {
+            var lagTimer = lagTimers.get(i);
+            var submitted = System.nanoTime();
+            eventLoops.get(i).execute(() -> lagTimer.record(System.nanoTime() - submitted, NANOSECONDS));
+        }
+    }
+}
@@ -27,32 +27,78 @@
 package ninckblokje.poc.testcontainers.cosmosdb.provisioning;
 
 import com.azure.cosmos.CosmosAsyncClient;
+import com.azure.cosmos.CosmosAsyncDatabase;
+import com.azure.cosmos.CosmosException;
 import com.azure.cosmos.models.*;
+import ninckblokje.poc.testcontainers.cosmosdb.sharding.StarshipShardMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Schedulers;
 
 import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
 
+import static java.util.stream.Collectors.toList;
+
 @Component
 public class CosmosDBProvisioner {
 
     private final static Logger logger = LoggerFactory.getLogger(CosmosDBProvisioner.class);
 
     private final CosmosAsyncClient cosmosAsyncClient;
+    private final StarshipShardMap shardMap;
+
+    private final String partitionKeyPath = "/franchise";
+    private final List<String> includedPaths = List.of("/franchise/?", "/name/?", "/className/?");
+    private final List<String> excludedPaths = List.of("/\"_etag\"/?", "/*");
+    private final int autoscaleMaxThroughput = 4000;
 
-    private final String containerName = "starships";
     private final String databaseName;
+    private final String uri;
+    private final boolean fastStart;
+    private final Path fingerprintFile;
 
-    public CosmosDBProvisioner(CosmosAsyncClient cosmosAsyncClient, @Value("${azure.cosmos.database}") String databaseName) {
+    public CosmosDBProvisioner(CosmosAsyncClient cosmosAsyncClient, StarshipShardMap shardMap,
+                               @Value("${azure.cosmos.database}") String databaseName,
+                               @Value("${azure.cosmos.uri}") String uri,
+                               @Value("${starship.provisioning.fast-start:false}") boolean fastStart,
+                               @Value("${starship.provisioning.fingerprint-file:${java.io.tmpdir}/poc-testcontainers-cosmosdb.fingerprint}") Path fingerprintFile) {
         this.cosmosAsyncClient = cosmosAsyncClient;
+        this.shardMap = shardMap;
         this.databaseName = databaseName;
+        this.uri = uri;
+        this.fastStart = fastStart;
+        this.fingerprintFile = fingerprintFile;
     }
 
     @PostConstruct
     public void postContruct() {
+        var fingerprint = fingerprint();
+
+        if (fastStart && fingerprint.equals(readFingerprint())) {
+            logger.info("CosmosDB {} already provisioned with fingerprint {}, skipping provisioning", databaseName, fingerprint);
+        } else {
+            provision();
+            if (fastStart) {
+                writeFingerprint(fingerprint);
+            }
+        }
+
+        if (fastStart) {
+            warmUp();
+        }
+    }
+
+    private void provision() {
         logger.info("Provisioning CosmosDB {}", databaseName);
 
         var databaseResponse = cosmosAsyncClient.createDatabaseIfNotExists(databaseName).block();
@@ -70,22 +116,19 @@ public class CosmosDBProvisioner {
         }
 
         var database = cosmosAsyncClient.getDatabase(databaseName);
+        shardMap.getContainerNames().forEach(containerName -> provisionContainer(database, containerName));
+    }
 
-        var containerProperties = new CosmosContainerProperties(containerName, "/franchise");
+    // every container gets its own autoscale throughput, so adding containers scales the throughput
+    private void provisionContainer(CosmosAsyncDatabase database, String containerName) {
+        var containerProperties = new CosmosContainerProperties(containerName, partitionKeyPath);
 
         var indexingPolicy = new IndexingPolicy();
         containerProperties.setIndexingPolicy(indexingPolicy);
-        indexingPolicy.setIncludedPaths(List.of(
-                new IncludedPath("/franchise/?"),
-                new IncludedPath("/name/?"),
-                new IncludedPath("/className/?")
-        ));
-        indexingPolicy.setExcludedPaths(List.of(
-                new ExcludedPath("/\"_etag\"/?"),
-                new ExcludedPath("/*")
-        ));
-
-        var containerResponse = database.createContainerIfNotExists(containerProperties, ThroughputProperties.createAutoscaledThroughput(4000)).block();
+        indexingPolicy.setIncludedPaths(includedPaths.stream().map(IncludedPath::new).collect(toList()));
+        indexingPolicy.setExcludedPaths(excludedPaths.stream().map(ExcludedPath::new).collect(toList()));
+
+        var containerResponse = database.createContainerIfNotExists(containerProperties, ThroughputProperties.createAutoscaledThroughput(autoscaleMaxThroughput)).block();
         switch (containerResponse.getStatusCode()) {
             case 200:
                 logger.info("Container {} already exists", containerName);
@@ -94,9 +137,78 @@ public class CosmosDBProvisioner {
                 logger.info("Container {} created", containerName);
                 break;
             default:
-                var error = String.format("Unknown response %d when creating container %s", databaseResponse.getStatusCode(), containerName);
+                var error = String.format("Unknown response %d when creating container %s", containerResponse.getStatusCode(), containerName);
                 logger.error(error);
                 throw new RuntimeException(error);
         }
     }
+
+    // opens the connections and fills the partition key range cache without delaying the startup
+    private void warmUp() {
+        shardMap.getContainerNames().forEach(this::warmUp);
+    }
+
+    private void warmUp(String containerName) {
+        cosmosAsyncClient.getDatabase(databaseName).getContainer(containerName)
+                .openConnectionsAndInitCaches()
+                .subscribe(
+                        unused -> {},
+                        ex -> {
+                            logger.warn("Warming up container {} failed", containerName, ex);
+                            if (ex instanceof CosmosException && ((CosmosException) ex).getStatusCode() == 404) {
+                                // removed after the fingerprint was written, so provision again on the next start
+                                Schedulers.boundedElastic().schedule(this::deleteFingerprint);
+                            }
+                        },
+                        () -> logger.info("Container {} warmed up", containerName)
+                );
+    }
+
+    private String fingerprint() {
+        var schema = String.join("\n",
+                uri,
+                databaseName,
+                String.join(",", shardMap.getContainerNames()),
+                partitionKeyPath,
+                String.join(",", includedPaths),
+                String.join(",", excludedPaths),
+                String.valueOf(autoscaleMaxThroughput));
+
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(schema.getBytes(StandardCharsets.UTF_8));
+            return String.format("%064x", new BigInteger(1, digest));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private String readFingerprint() {
+        if (!Files.exists(fingerprintFile)) {
+            return null;
+        }
+
+        try {
+            return Files.readString(fingerprintFile).trim();
+        } catch (IOException ex) {
+            logger.warn("Unable to read provisioning fingerprint from {}", fingerprintFile, ex);
+            return null;
+        }
+    }
+
+    private void deleteFingerprint() {
+        try {
+            Files.deleteIfExists(fingerprintFile);
+            logger.warn("Deleted provisioning fingerprint {}, the next start provisions CosmosDB {} again", fingerprintFile, databaseName);
+        } catch (IOException ex) {
+            logger.error("Unable to delete provisioning fingerprint {}", fingerprintFile, ex);
+        }
+    }
+
+    private void writeFingerprint(String fingerprint) {
+        try {
+            Files.writeString(fingerprintFile, fingerprint);
+        } catch (IOException ex) {
+            logger.warn("Unable to write provisioning fingerprint to {}", fingerprintFile, ex);
+        }
+    }
 }
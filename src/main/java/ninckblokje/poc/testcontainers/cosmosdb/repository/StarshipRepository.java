@@ -26,14 +26,13 @@
 
 package ninckblokje.poc.testcontainers.cosmosdb.repository;
 
-import com.azure.spring.data.cosmos.repository.ReactiveCosmosRepository;
-import ninckblokje.poc.testcontainers.cosmosdb.model.Franchise;
 import ninckblokje.poc.testcontainers.cosmosdb.model.Starship;
+import org.springframework.data.repository.RepositoryDefinition;
 import org.springframework.stereotype.Repository;
-import reactor.core.publisher.Flux;
 
+// only exposes the operations routed by the shard map, the operations of ReactiveCosmosRepository would all use the
+// container of the @Container annotation
 @Repository
-public interface StarshipRepository extends ReactiveCosmosRepository<Starship, String> {
-
-    Flux<Starship> findAllByFranchise(Franchise franchise);
+@RepositoryDefinition(domainClass = Starship.class, idClass = String.class)
+public interface StarshipRepository extends StarshipRepositoryCustom {
 }
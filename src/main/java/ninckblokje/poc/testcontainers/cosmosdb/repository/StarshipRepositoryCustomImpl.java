@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.repository;
+
+import com.azure.cosmos.CosmosAsyncClient;
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosDiagnostics;
+import com.azure.cosmos.models.*;
+import com.azure.spring.data.cosmos.common.CosmosUtils;
+import com.azure.spring.data.cosmos.config.CosmosConfig;
+import com.azure.spring.data.cosmos.core.ReactiveCosmosOperations;
+import com.azure.spring.data.cosmos.exception.CosmosExceptionUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+import ninckblokje.poc.testcontainers.cosmosdb.model.Franchise;
+import ninckblokje.poc.testcontainers.cosmosdb.model.Starship;
+import ninckblokje.poc.testcontainers.cosmosdb.monitoring.QueryCostAnalyzer;
+import ninckblokje.poc.testcontainers.cosmosdb.session.CosmosSession;
+import ninckblokje.poc.testcontainers.cosmosdb.sharding.ShardRouter;
+import ninckblokje.poc.testcontainers.cosmosdb.sharding.StarshipShardMap;
+import org.springframework.beans.factory.annotation.Value;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public class StarshipRepositoryCustomImpl implements StarshipRepositoryCustom {
+
+    private final ReactiveCosmosOperations cosmosOperations;
+    private final CosmosConfig cosmosConfig;
+    private final QueryCostAnalyzer queryCostAnalyzer;
+
+    private final ShardRouter<CosmosAsyncContainer> containers;
+
+    public StarshipRepositoryCustomImpl(CosmosAsyncClient cosmosAsyncClient, ReactiveCosmosOperations cosmosOperations, CosmosConfig cosmosConfig,
+                                        QueryCostAnalyzer queryCostAnalyzer, StarshipShardMap shardMap, @Value("${azure.cosmos.database}") String databaseName) {
+        this.cosmosOperations = cosmosOperations;
+        this.cosmosConfig = cosmosConfig;
+        this.queryCostAnalyzer = queryCostAnalyzer;
+
+        var database = cosmosAsyncClient.getDatabase(databaseName);
+        this.containers = new ShardRouter<>(shardMap, database::getContainer);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <S extends Starship> Mono<S> save(S starship) {
+        var isNew = starship.getId() == null;
+        if (isNew) {
+            starship.setId(UUID.randomUUID().toString());
+        }
+
+        var item = cosmosOperations.getConverter().writeJsonNode(starship);
+        var partitionKey = partitionKeyOf(starship.getFranchise());
+        var container = containers.route(starship.getFranchise());
+        var options = new CosmosItemRequestOptions();
+        var response = isNew
+                ? container.createItem(item, partitionKey, options)
+                : container.upsertItem(item, partitionKey, options);
+
+        return CosmosSession.current()
+                .flatMap(session -> {
+                    var recording = queryCostAnalyzer.startOperation(isNew ? "CREATE ITEM" : "UPSERT ITEM", starship.getFranchise().name());
+                    return response.doOnNext(itemResponse -> {
+                                processDiagnostics(itemResponse.getDiagnostics());
+                                recording.response(itemResponse.getRequestCharge());
+                                // hand the session token of the write to the client, so it can read its own write from any instance
+                                session.ifPresent(current -> current.setResponseSessionToken(container.getId(), itemResponse.getSessionToken()));
+                            })
+                            .doOnError(recording::error)
+                            .doFinally(signal -> recording.complete());
+                })
+                .map(itemResponse -> (S) toStarship(itemResponse.getItem()))
+                .onErrorResume(throwable -> CosmosExceptionUtils.exceptionHandler("Failed to save starship", throwable));
+    }
+
+    @Override
+    public Mono<Starship> findById(String id, Franchise franchise) {
+        var container = containers.route(franchise);
+
+        return CosmosSession.current()
+                .flatMap(session -> {
+                    var options = new CosmosItemRequestOptions();
+                    options.setSessionToken(sessionTokenOf(session, container));
+
+                    var recording = queryCostAnalyzer.startOperation("READ ITEM", franchise.name());
+                    return container.readItem(id, partitionKeyOf(franchise), options, JsonNode.class)
+                            .doOnNext(itemResponse -> {
+                                processDiagnostics(itemResponse.getDiagnostics());
+                                recording.response(itemResponse.getRequestCharge());
+                            })
+                            .doOnError(recording::error)
+                            .doFinally(signal -> recording.complete());
+                })
+                .map(itemResponse -> toStarship(itemResponse.getItem()))
+                .onErrorResume(throwable -> CosmosExceptionUtils.findAPIExceptionHandler("Failed to find starship by id", throwable));
+    }
+
+    @Override
+    public Flux<Starship> findAll() {
+        // ordered by the indexed name only when the results of several containers are merged, the ordering makes the
+        // cross-partition query more expensive
+        return containers.scatterGather(
+                (container, ordered) -> query(container, new SqlQuerySpec(ordered ? "SELECT * FROM c ORDER BY c.name" : "SELECT * FROM c"),
+                        null, new CosmosQueryRequestOptions()),
+                Comparator.comparing(Starship::getName));
+    }
+
+    @Override
+    public Flux<Starship> findAllByFranchise(Franchise franchise) {
+        var querySpec = new SqlQuerySpec("SELECT * FROM c WHERE c.franchise = @franchise", List.of(new SqlParameter("@franchise", franchise.name())));
+        var options = new CosmosQueryRequestOptions();
+        options.setPartitionKey(partitionKeyOf(franchise));
+        return query(containers.route(franchise), querySpec, franchise.name(), options);
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return Flux.fromIterable(containers.getShards())
+                .flatMap(container -> container.queryItems("SELECT c.id, c.franchise FROM c", new CosmosQueryRequestOptions(), JsonNode.class)
+                        .flatMap(item -> container.deleteItem(item.get("id").asText(), new PartitionKey(item.get("franchise").asText()), new CosmosItemRequestOptions())))
+                .onErrorResume(throwable -> CosmosExceptionUtils.exceptionHandler("Failed to delete all starships", throwable))
+                .then();
+    }
+
+    // partitionKey is only used for analyzing the query cost, it is null for cross-partition queries
+    private Flux<Starship> query(CosmosAsyncContainer container, SqlQuerySpec querySpec, String partitionKey, CosmosQueryRequestOptions options) {
+        options.setQueryMetricsEnabled(cosmosConfig.isQueryMetricsEnabled() || queryCostAnalyzer.isQueryMetricsEnabled());
+
+        return CosmosSession.current()
+                .flatMapMany(session -> {
+                    options.setSessionToken(sessionTokenOf(session, container));
+
+                    var recording = queryCostAnalyzer.startQuery(querySpec.getQueryText(), partitionKey);
+                    return container.queryItems(querySpec, options, JsonNode.class).byPage()
+                            .doOnNext(recording::page)
+                            .doOnError(recording::error)
+                            .doFinally(signal -> recording.complete());
+                })
+                .doOnNext(page -> CosmosUtils.fillAndProcessResponseDiagnostics(cosmosConfig.getResponseDiagnosticsProcessor(), page.getCosmosDiagnostics(), page))
+                .concatMapIterable(FeedResponse::getResults)
+                .map(this::toStarship)
+                .onErrorResume(throwable -> CosmosExceptionUtils.exceptionHandler("Failed to query starships", throwable));
+    }
+
+    private Starship toStarship(JsonNode item) {
+        return cosmosOperations.getConverter().read(Starship.class, item);
+    }
+
+    private void processDiagnostics(CosmosDiagnostics diagnostics) {
+        CosmosUtils.fillAndProcessResponseDiagnostics(cosmosConfig.getResponseDiagnosticsProcessor(), diagnostics, null);
+    }
+
+    private String sessionTokenOf(Optional<CosmosSession> session, CosmosAsyncContainer container) {
+        return session.map(current -> current.getRequestSessionToken(container.getId())).orElse(null);
+    }
+
+    private PartitionKey partitionKeyOf(Franchise franchise) {
+        return new PartitionKey(franchise.name());
+    }
+}
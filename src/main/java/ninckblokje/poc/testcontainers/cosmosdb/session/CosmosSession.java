@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.session;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static java.util.stream.Collectors.joining;
+
+// the Cosmos DB session of a single HTTP request, carried in the Reactor context
+public class CosmosSession {
+
+    public static final String SESSION_TOKEN_HEADER = "x-ms-session-token";
+
+    // session tokens belong to a single container, so the header holds container=token pairs separated by ;, a session
+    // token itself can contain = on accounts with multiple regions
+    private final Map<String, String> requestSessionTokens = new HashMap<>();
+    private final Map<String, String> responseSessionTokens = new ConcurrentSkipListMap<>();
+
+    private String unscopedRequestSessionToken;
+
+    public CosmosSession(String requestSessionTokens, Collection<String> containerNames) {
+        if (requestSessionTokens == null) {
+            return;
+        }
+
+        for (var sessionToken : requestSessionTokens.split(";")) {
+            var separator = sessionToken.indexOf('=');
+            var containerName = separator < 0 ? null : sessionToken.substring(0, separator).trim();
+            if (containerName != null && containerNames.contains(containerName)) {
+                this.requestSessionTokens.put(containerName, sessionToken.substring(separator + 1).trim());
+            } else if (!sessionToken.isBlank()) {
+                // a plain session token without container is used for every container
+                unscopedRequestSessionToken = sessionToken.trim();
+            }
+        }
+    }
+
+    public static Mono<Optional<CosmosSession>> current() {
+        return Mono.deferContextual(context -> Mono.just(context.getOrEmpty(CosmosSession.class)));
+    }
+
+    public String getRequestSessionToken(String containerName) {
+        return requestSessionTokens.getOrDefault(containerName, unscopedRequestSessionToken);
+    }
+
+    public String getResponseSessionToken() {
+        if (responseSessionTokens.isEmpty()) {
+            return null;
+        }
+
+        return responseSessionTokens.entrySet().stream()
+                .map(entry -> entry.getKey() + "=" + entry.getValue())
+                .collect(joining(";"));
+    }
+
+    public void setResponseSessionToken(String containerName, String sessionToken) {
+        responseSessionTokens.put(containerName, sessionToken);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.session;
+
+import ninckblokje.poc.testcontainers.cosmosdb.sharding.StarshipShardMap;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import static ninckblokje.poc.testcontainers.cosmosdb.session.CosmosSession.SESSION_TOKEN_HEADER;
+
+@Component
+public class CosmosSessionWebFilter implements WebFilter {
+
+    private final StarshipShardMap shardMap;
+
+    public CosmosSessionWebFilter(StarshipShardMap shardMap) {
+        this.shardMap = shardMap;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        var session = new CosmosSession(exchange.getRequest().getHeaders().getFirst(SESSION_TOKEN_HEADER), shardMap.getContainerNames());
+
+        exchange.getResponse().beforeCommit(() -> {
+            var sessionToken = session.getResponseSessionToken();
+            if (sessionToken != null) {
+                exchange.getResponse().getHeaders().set(SESSION_TOKEN_HEADER, sessionToken);
+            }
+            return Mono.empty();
+        });
+
+        return chain.filter(exchange)
+                .contextWrite(context -> context.put(CosmosSession.class, session));
+    }
+}
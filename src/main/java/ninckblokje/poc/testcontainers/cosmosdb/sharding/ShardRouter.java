@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.sharding;
+
+import ninckblokje.poc.testcontainers.cosmosdb.model.Franchise;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toList;
+
+// routes operations to the shard owning a partition key, a shard can be a Cosmos DB container or an in-memory stand-in
+public class ShardRouter<T> {
+
+    private final StarshipShardMap shardMap;
+    private final Map<String, T> shards = new LinkedHashMap<>();
+
+    public ShardRouter(StarshipShardMap shardMap, Function<String, T> shardFactory) {
+        this.shardMap = shardMap;
+        shardMap.getContainerNames().forEach(containerName -> shards.put(containerName, shardFactory.apply(containerName)));
+    }
+
+    public T route(Franchise franchise) {
+        return shards.get(shardMap.containerNameOf(franchise));
+    }
+
+    public T route(String partitionKey) {
+        return shards.get(shardMap.containerNameOf(partitionKey));
+    }
+
+    public Collection<T> getShards() {
+        return shards.values();
+    }
+
+    // the query gets whether the results are merged, then every shard has to return its results in the given ordering, so
+    // the merged results keep that ordering; a single shard is not merged, so it can skip the ordering
+    @SuppressWarnings("unchecked")
+    public <R> Flux<R> scatterGather(BiFunction<T, Boolean, Flux<R>> query, Comparator<? super R> ordering) {
+        if (shards.size() == 1) {
+            return query.apply(shards.values().iterator().next(), false);
+        }
+
+        var results = shards.values().stream()
+                .map(shard -> query.apply(shard, true))
+                .collect(toList());
+        return Flux.mergeOrdered(ordering, results.toArray(Publisher[]::new));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.sharding;
+
+import ninckblokje.poc.testcontainers.cosmosdb.model.Franchise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+// maps partition keys onto containers, either explicitly per franchise or by hash range
+@Component
+public class StarshipShardMap {
+
+    private final static Logger logger = LoggerFactory.getLogger(StarshipShardMap.class);
+
+    private final List<String> containerNames;
+    private final Map<String, String> franchiseContainerNames = new LinkedHashMap<>();
+
+    public StarshipShardMap(@Value("${starship.sharding.containers:starships}") List<String> containerNames,
+                            @Value("${starship.sharding.franchises:}") List<String> franchiseMappings) {
+        if (containerNames.isEmpty()) {
+            throw new IllegalArgumentException("At least one starship container is required");
+        }
+        if (new LinkedHashSet<>(containerNames).size() != containerNames.size()) {
+            throw new IllegalArgumentException(String.format("Duplicate starship containers in %s", containerNames));
+        }
+        this.containerNames = List.copyOf(containerNames);
+
+        for (var franchiseMapping : franchiseMappings) {
+            var parts = franchiseMapping.split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException(String.format("Invalid franchise mapping %s, expected FRANCHISE=container", franchiseMapping));
+            }
+
+            var franchise = Franchise.valueOf(parts[0].trim());
+            var containerName = parts[1].trim();
+            if (!containerNames.contains(containerName)) {
+                throw new IllegalArgumentException(String.format("Franchise %s is mapped to unknown container %s", franchise, containerName));
+            }
+            franchiseContainerNames.put(franchise.name(), containerName);
+        }
+
+        logger.info("Starship containers {}, franchise mapping {}", this.containerNames, franchiseContainerNames);
+    }
+
+    public List<String> getContainerNames() {
+        return containerNames;
+    }
+
+    public String containerNameOf(Franchise franchise) {
+        return containerNameOf(franchise.name());
+    }
+
+    public String containerNameOf(String partitionKey) {
+        var containerName = franchiseContainerNames.get(partitionKey);
+        if (containerName != null) {
+            return containerName;
+        }
+
+        // splits the 32 bit hash space in equal ranges
+        var range = (Integer.toUnsignedLong(hash(partitionKey)) * containerNames.size()) >>> 32;
+        return containerNames.get((int) range);
+    }
+
+    // String.hashCode is the same on every JVM, but similar keys only differ in the low bits, so mix them like MurmurHash3
+    private static int hash(String partitionKey) {
+        var hash = partitionKey.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.controller;
+
+import ninckblokje.poc.testcontainers.cosmosdb.changefeed.StarshipChangeFeed;
+import ninckblokje.poc.testcontainers.cosmosdb.model.Starship;
+import ninckblokje.poc.testcontainers.cosmosdb.repository.StarshipRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static ninckblokje.poc.testcontainers.cosmosdb.model.Franchise.STAR_TREK;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM;
+
+public class StarshipControllerTest {
+
+    private final StarshipRepository starshipRepository = mock(StarshipRepository.class);
+    private final StarshipChangeFeed starshipChangeFeed = mock(StarshipChangeFeed.class);
+
+    private final WebTestClient webClient = WebTestClient
+            .bindToController(new StarshipController(starshipRepository, starshipChangeFeed))
+            .build();
+
+    @Test
+    public void testStreamResyncOnOverflow() {
+        var snapshot = new Starship("1", STAR_TREK, "Constitution", "U.S.S. Enterprise", "NCC-1701");
+
+        when(starshipRepository.findAll()).thenReturn(Flux.just(snapshot));
+        when(starshipChangeFeed.changes()).thenReturn(Flux.error(Exceptions.failWithOverflow()));
+
+        var events = webClient.get()
+                .uri("/api/starship/stream")
+                .accept(TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<Starship>>() {})
+                .getResponseBody()
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertEquals(2, events.size());
+        assertEquals("snapshot", events.get(0).event());
+        assertEquals("NCC-1701", events.get(0).data().getRegistration());
+        assertEquals("resync", events.get(1).event());
+        assertNull(events.get(1).data());
+    }
+
+    @Test
+    public void testGetStarship() {
+        when(starshipRepository.findById("1", STAR_TREK)).thenReturn(Mono.just(new Starship("1", STAR_TREK, "Constitution", "U.S.S. Enterprise", "NCC-1701")));
+        when(starshipRepository.findById("2", STAR_TREK)).thenReturn(Mono.empty());
+
+        webClient.get()
+                .uri("/api/starship/STAR_TREK/1")
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectBody(Starship.class).value(starship -> assertEquals("NCC-1701", starship.getRegistration()));
+
+        webClient.get()
+                .uri("/api/starship/STAR_TREK/2")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+}
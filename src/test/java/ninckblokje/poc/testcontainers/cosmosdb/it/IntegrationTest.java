@@ -27,35 +27,47 @@
 package ninckblokje.poc.testcontainers.cosmosdb.it;
 
 import com.azure.cosmos.CosmosAsyncClient;
-import com.github.dockerjava.api.model.PortBinding;
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosException;
 import ninckblokje.poc.testcontainers.cosmosdb.PocTestcontainersCosmosdbApplication;
+import ninckblokje.poc.testcontainers.cosmosdb.it.support.CosmosDBEmulatorContainer;
 import ninckblokje.poc.testcontainers.cosmosdb.it.support.TestCosmosDBConfig;
 import ninckblokje.poc.testcontainers.cosmosdb.model.Starship;
+import ninckblokje.poc.testcontainers.cosmosdb.provisioning.CosmosDBProvisioner;
 import ninckblokje.poc.testcontainers.cosmosdb.repository.StarshipRepository;
+import ninckblokje.poc.testcontainers.cosmosdb.sharding.StarshipShardMap;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.context.annotation.Import;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.web.reactive.function.BodyInserters;
-import org.testcontainers.containers.GenericContainer;
-import org.testcontainers.containers.wait.strategy.Wait;
-import org.testcontainers.images.PullPolicy;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.util.Map;
-import java.util.concurrent.ThreadLocalRandom;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 
 import static ninckblokje.poc.testcontainers.cosmosdb.model.Franchise.STAR_TREK;
+import static ninckblokje.poc.testcontainers.cosmosdb.session.CosmosSession.SESSION_TOKEN_HEADER;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.HttpHeaders.ACCEPT_ENCODING;
+import static org.springframework.http.HttpHeaders.CONTENT_ENCODING;
 import static org.springframework.http.HttpStatus.CREATED;
 import static org.springframework.http.HttpStatus.OK;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM;
 
 @SpringBootTest(classes = PocTestcontainersCosmosdbApplication.class, webEnvironment = RANDOM_PORT)
 @Import(TestCosmosDBConfig.class)
@@ -63,33 +75,21 @@ import static org.springframework.http.MediaType.APPLICATION_JSON;
 @Testcontainers
 public class IntegrationTest {
 
-    private static final int randomCosmosDBPort = ThreadLocalRandom.current().nextInt(20_000, 30_000);
-
-    {
-        System.setProperty("RANDOM_COSMOSDB_PORT", String.valueOf(randomCosmosDBPort));
-    }
-
     @Container
-    private static final GenericContainer cosmosDBContainer = new GenericContainer<>("mcr.microsoft.com/cosmosdb/linux/azure-cosmos-emulator:latest")
-            .withImagePullPolicy(PullPolicy.alwaysPull())
-            .withExposedPorts(randomCosmosDBPort)
-            .withEnv(Map.of(
-                    "AZURE_COSMOS_EMULATOR_PARTITION_COUNT", "3",
-                    "AZURE_COSMOS_EMULATOR_ENABLE_DATA_PERSISTENCE", "true",
-                    "AZURE_COSMOS_EMULATOR_IP_ADDRESS_OVERRIDE", "127.0.0.1",
-                    "AZURE_COSMOS_EMULATOR_ARGS", String.format("-enablepreview -port=%d", randomCosmosDBPort)
-            ))
-            .withCreateContainerCmdModifier(cmd -> cmd.getHostConfig().withPortBindings(PortBinding.parse(String.format("%d:%d", randomCosmosDBPort, randomCosmosDBPort))))
-            .waitingFor(Wait.forLogMessage("Started\r\n", 1));
+    private static final CosmosDBEmulatorContainer cosmosDBContainer = new CosmosDBEmulatorContainer();
 
     @Value("${azure.cosmos.database}")
     private String databaseName;
+    @Value("${azure.cosmos.uri}")
+    private String uri;
 
     @Autowired
     private CosmosAsyncClient cosmosAsyncClient;
     @Autowired
     private StarshipRepository starshipRepository;
     @Autowired
+    private StarshipShardMap shardMap;
+    @Autowired
     private WebTestClient webClient;
 
     @BeforeEach
@@ -146,4 +146,177 @@ public class IntegrationTest {
             assertEquals("NCC-1701-E", starship.getRegistration());
         });
     }
+
+    @Test
+    public void testStream() {
+        starshipRepository.save(new Starship(STAR_TREK, "Constitution", "U.S.S. Enterprise", "NCC-1701")).block();
+
+        var events = webClient.get()
+                .uri("/api/starship/stream")
+                .accept(TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<Starship>>() {})
+                .getResponseBody()
+                .concatMap(event -> "snapshot".equals(event.event())
+                        ? starshipRepository.save(new Starship(STAR_TREK, "Excelsior", "U.S.S. Enterprise", "NCC-1701-B")).thenReturn(event)
+                        : Mono.just(event))
+                // changes of earlier writes can still be on their way when the stream is opened
+                .filter(event -> "snapshot".equals(event.event()) || "NCC-1701-B".equals(event.data().getRegistration()))
+                .take(2)
+                .collectList()
+                .block(Duration.ofSeconds(30));
+
+        assertEquals(2, events.size());
+        assertEquals("snapshot", events.get(0).event());
+        assertEquals("NCC-1701", events.get(0).data().getRegistration());
+        assertEquals("change", events.get(1).event());
+        assertEquals("NCC-1701-B", events.get(1).data().getRegistration());
+        assertEquals(events.get(1).data().getId(), events.get(1).id());
+    }
+
+    @Test
+    public void testCompression() {
+        Flux.range(0, 20)
+                .concatMap(i -> starshipRepository.save(new Starship(STAR_TREK, "Constitution", "U.S.S. Enterprise", String.format("NCC-1701-%d", i))))
+                .blockLast();
+
+        webClient.get()
+                .uri("/api/starship")
+                .header(ACCEPT_ENCODING, "gzip")
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectHeader().valueEquals(CONTENT_ENCODING, "gzip");
+
+        webClient.get()
+                .uri("/api/starship")
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectHeader().doesNotExist(CONTENT_ENCODING);
+    }
+
+    @Test
+    public void testSessionToken() {
+        var result = webClient.post()
+                .uri("/api/starship")
+                .contentType(APPLICATION_JSON)
+                .body(BodyInserters.fromValue(new Starship(STAR_TREK, "Galaxy", "U.S.S. Enterprise", "NCC-1701-D")))
+                .exchange()
+                .expectStatus().isEqualTo(CREATED)
+                .expectHeader().exists(SESSION_TOKEN_HEADER)
+                .returnResult(Starship.class);
+        var sessionToken = result.getResponseHeaders().getFirst(SESSION_TOKEN_HEADER);
+        var id = result.getResponseBody().blockFirst().getId();
+
+        webClient.get()
+                .uri("/api/starship/STAR_TREK/{id}", id)
+                .header(SESSION_TOKEN_HEADER, sessionToken)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectHeader().doesNotExist(SESSION_TOKEN_HEADER)
+                .expectBody(Starship.class).value(starship -> assertEquals("NCC-1701-D", starship.getRegistration()));
+
+        webClient.get()
+                .uri("/api/starship/STAR_WARS/{id}", id)
+                .header(SESSION_TOKEN_HEADER, sessionToken)
+                .exchange()
+                .expectStatus().isNotFound();
+
+        webClient.get()
+                .uri("/api/starship/STAR_TREK")
+                .header(SESSION_TOKEN_HEADER, sessionToken)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectHeader().doesNotExist(SESSION_TOKEN_HEADER)
+                .expectBodyList(Starship.class).hasSize(1).value(starships -> assertEquals("NCC-1701-D", starships.get(0).getRegistration()));
+    }
+
+    @Test
+    public void testQueryCost() {
+        webClient.delete()
+                .uri("/actuator/querycost")
+                .exchange()
+                .expectStatus().is2xxSuccessful();
+
+        webClient.post()
+                .uri("/api/starship")
+                .contentType(APPLICATION_JSON)
+                .body(BodyInserters.fromValue(new Starship(STAR_TREK, "Constitution", "U.S.S. Enterprise", "NCC-1701-A")))
+                .exchange()
+                .expectStatus().isEqualTo(CREATED);
+
+        webClient.get()
+                .uri("/api/starship/STAR_TREK")
+                .exchange()
+                .expectStatus().isEqualTo(OK);
+
+        webClient.get()
+                .uri("/actuator/querycost")
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectBody()
+                .jsonPath("$.partitions.STAR_TREK.requests").isEqualTo(2)
+                .jsonPath("$.partitions.STAR_TREK.requestCharge").value(requestCharge -> assertTrue(((Number) requestCharge).doubleValue() > 0))
+                .jsonPath("$.queryShapes['SELECT * FROM c WHERE c.franchise = @franchise'].returnedDocuments").isEqualTo(1);
+
+        webClient.get()
+                .uri("/actuator/querycost?top=-1")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void testFastStart(@TempDir Path tempDir) throws IOException, InterruptedException {
+        var fastStartDatabaseName = databaseName + "-fast-start";
+        var fingerprintFile = tempDir.resolve("fingerprint");
+        var container = cosmosAsyncClient.getDatabase(fastStartDatabaseName).getContainer("starships");
+
+        try {
+            // without fingerprint it provisions and writes the fingerprint
+            fastStartProvisioner(fastStartDatabaseName, fingerprintFile).postContruct();
+            assertTrue(exists(container));
+            var fingerprint = Files.readString(fingerprintFile);
+
+            // a matching fingerprint skips the provisioning, so the removed container stays removed
+            container.delete().block();
+            fastStartProvisioner(fastStartDatabaseName, fingerprintFile).postContruct();
+            assertFalse(exists(container));
+
+            // warming up the removed container deletes the stale fingerprint
+            var deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+            while (Files.exists(fingerprintFile) && System.nanoTime() < deadline) {
+                Thread.sleep(100);
+            }
+            assertFalse(Files.exists(fingerprintFile));
+
+            fastStartProvisioner(fastStartDatabaseName, fingerprintFile).postContruct();
+            assertTrue(exists(container));
+            assertEquals(fingerprint, Files.readString(fingerprintFile));
+
+            // a different fingerprint provisions and rewrites the fingerprint
+            container.delete().block();
+            Files.writeString(fingerprintFile, "different");
+            fastStartProvisioner(fastStartDatabaseName, fingerprintFile).postContruct();
+            assertTrue(exists(container));
+            assertEquals(fingerprint, Files.readString(fingerprintFile));
+
+            // an unreadable fingerprint provisions
+            container.delete().block();
+            fastStartProvisioner(fastStartDatabaseName, Files.createDirectory(tempDir.resolve("unreadable"))).postContruct();
+            assertTrue(exists(container));
+        } finally {
+            cosmosAsyncClient.getDatabase(fastStartDatabaseName).delete().onErrorResume(ex -> Mono.empty()).block();
+        }
+    }
+
+    private CosmosDBProvisioner fastStartProvisioner(String databaseName, Path fingerprintFile) {
+        return new CosmosDBProvisioner(cosmosAsyncClient, shardMap, databaseName, uri, true, fingerprintFile);
+    }
+
+    private boolean exists(CosmosAsyncContainer container) {
+        return container.read()
+                .map(response -> true)
+                .onErrorResume(CosmosException.class, ex -> ex.getStatusCode() == 404 ? Mono.just(false) : Mono.error(ex))
+                .block();
+    }
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.it.support;
+
+import com.github.dockerjava.api.model.PortBinding;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.images.PullPolicy;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+// the emulator has to listen on the same port inside and outside the container, the port is passed to Spring as RANDOM_COSMOSDB_PORT
+public class CosmosDBEmulatorContainer extends GenericContainer<CosmosDBEmulatorContainer> {
+
+    public CosmosDBEmulatorContainer() {
+        this(ThreadLocalRandom.current().nextInt(20_000, 30_000));
+    }
+
+    private CosmosDBEmulatorContainer(int port) {
+        super("mcr.microsoft.com/cosmosdb/linux/azure-cosmos-emulator:latest");
+
+        System.setProperty("RANDOM_COSMOSDB_PORT", String.valueOf(port));
+
+        withImagePullPolicy(PullPolicy.alwaysPull());
+        withExposedPorts(port);
+        withEnv(Map.of(
+                "AZURE_COSMOS_EMULATOR_PARTITION_COUNT", "3",
+                "AZURE_COSMOS_EMULATOR_ENABLE_DATA_PERSISTENCE", "true",
+                "AZURE_COSMOS_EMULATOR_IP_ADDRESS_OVERRIDE", "127.0.0.1",
+                "AZURE_COSMOS_EMULATOR_ARGS", String.format("-enablepreview -port=%d", port)
+        ));
+        withCreateContainerCmdModifier(cmd -> cmd.getHostConfig().withPortBindings(PortBinding.parse(String.format("%d:%d", port, port))));
+        waitingFor(Wait.forLogMessage("Started\r\n", 1));
+    }
+}
@@ -36,9 +36,11 @@ import com.azure.spring.data.cosmos.config.CosmosConfig;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 
 // never do this in production!!
 @Configuration
+@Profile("test")
 @EnableConfigurationProperties(CosmosProperties.class)
 public class TestCosmosDBConfig extends AbstractCosmosConfiguration {
 
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.load;
+
+import ninckblokje.poc.testcontainers.cosmosdb.load.support.LoadGenerator;
+import ninckblokje.poc.testcontainers.cosmosdb.load.support.LoadOperation;
+import ninckblokje.poc.testcontainers.cosmosdb.load.support.LoadTestReport;
+import ninckblokje.poc.testcontainers.cosmosdb.load.support.LoadTestSettings;
+import ninckblokje.poc.testcontainers.cosmosdb.load.support.RequestChargeRecorder;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public abstract class AbstractLoadTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired(required = false)
+    private RequestChargeRecorder requestChargeRecorder;
+
+    protected abstract String getTarget();
+
+    @Test
+    public void loadTest() throws IOException {
+        var settings = LoadTestSettings.fromSystemProperties();
+        var generator = new LoadGenerator(WebClient.create("http://localhost:" + port), settings);
+
+        generator.seed();
+        generator.run(settings.getWarmup());
+
+        var startedAt = Instant.now();
+        resetRequestCharge();
+        var result = generator.run(settings.getDuration());
+        var requestCharge = requestChargeRecorder == null ? null : requestChargeRecorder.reset();
+        Map<LoadOperation, Double> requestChargePerOperation = requestChargeRecorder == null ? Map.of() : generator.calibrate(requestChargeRecorder::reset);
+
+        new LoadTestReport(getTarget(), startedAt, settings, result, requestCharge, requestChargePerOperation)
+                .write(settings.getResultsDirectory());
+
+        assertTrue(result.getCount() > 0, "No operations executed");
+        assertTrue(result.getErrorRate() <= settings.getMaxErrorRate(), String.format("Error rate %.4f exceeds %.4f", result.getErrorRate(), settings.getMaxErrorRate()));
+    }
+
+    private void resetRequestCharge() {
+        if (requestChargeRecorder != null) {
+            requestChargeRecorder.reset();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.load;
+
+import ninckblokje.poc.testcontainers.cosmosdb.PocTestcontainersCosmosdbApplication;
+import ninckblokje.poc.testcontainers.cosmosdb.changefeed.StarshipChangeFeed;
+import ninckblokje.poc.testcontainers.cosmosdb.load.support.InMemoryStarshipConfig;
+import ninckblokje.poc.testcontainers.cosmosdb.provisioning.CosmosDBProvisioner;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(classes = PocTestcontainersCosmosdbApplication.class, webEnvironment = RANDOM_PORT, properties = {
+        "spring.profiles.active=in-memory",
+        "azure.cosmos.repositories.enabled=false",
+        "starship.sharding.containers=starships-1,starships-2",
+        "starship.sharding.franchises=STAR_TREK=starships-1"
+})
+@Import(InMemoryStarshipConfig.class)
+public class InMemoryLoadTest extends AbstractLoadTest {
+
+    @MockBean
+    private CosmosDBProvisioner cosmosDBProvisioner;
+    @MockBean
+    private StarshipChangeFeed starshipChangeFeed;
+
+    @Override
+    protected String getTarget() {
+        return "in-memory";
+    }
+}
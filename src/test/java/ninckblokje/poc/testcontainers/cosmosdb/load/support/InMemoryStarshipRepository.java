@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.load.support;
+
+import ninckblokje.poc.testcontainers.cosmosdb.model.Franchise;
+import ninckblokje.poc.testcontainers.cosmosdb.model.Starship;
+import ninckblokje.poc.testcontainers.cosmosdb.repository.StarshipRepository;
+import ninckblokje.poc.testcontainers.cosmosdb.sharding.ShardRouter;
+import ninckblokje.poc.testcontainers.cosmosdb.sharding.StarshipShardMap;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// local stand-in for Cosmos DB, only meant for measuring the service itself, a map per container of the shard map
+public class InMemoryStarshipRepository implements StarshipRepository {
+
+    private static final Comparator<Starship> byName = Comparator.comparing(Starship::getName);
+
+    private final ShardRouter<Map<String, Starship>> containers;
+
+    public InMemoryStarshipRepository(StarshipShardMap shardMap) {
+        this.containers = new ShardRouter<>(shardMap, containerName -> new ConcurrentHashMap<>());
+    }
+
+    @Override
+    public <S extends Starship> Mono<S> save(S starship) {
+        return Mono.fromSupplier(() -> {
+            if (starship.getId() == null) {
+                starship.setId(UUID.randomUUID().toString());
+            }
+            containers.route(starship.getFranchise()).put(starship.getId(), copy(starship));
+            return starship;
+        });
+    }
+
+    @Override
+    public Mono<Starship> findById(String id, Franchise franchise) {
+        return Mono.fromSupplier(() -> containers.route(franchise).get(id))
+                .filter(starship -> starship.getFranchise() == franchise)
+                .map(this::copy);
+    }
+
+    @Override
+    public Flux<Starship> findAll() {
+        return containers.scatterGather(
+                (starships, ordered) -> Flux.defer(() -> Flux.fromStream(ordered ? starships.values().stream().sorted(byName) : starships.values().stream()))
+                        .map(this::copy),
+                byName);
+    }
+
+    @Override
+    public Flux<Starship> findAllByFranchise(Franchise franchise) {
+        return Flux.defer(() -> Flux.fromIterable(containers.route(franchise).values()))
+                .filter(starship -> starship.getFranchise() == franchise)
+                .map(this::copy);
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return Mono.fromRunnable(() -> containers.getShards().forEach(Map::clear));
+    }
+
+    private Starship copy(Starship starship) {
+        return new Starship(starship.getId(), starship.getFranchise(), starship.getClassName(), starship.getName(), starship.getRegistration());
+    }
+}
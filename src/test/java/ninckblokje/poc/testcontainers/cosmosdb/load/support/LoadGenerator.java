@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.load.support;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+
+public class LoadGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private final WebClient webClient;
+    private final LoadTestSettings settings;
+
+    private final LoadOperation[] operations;
+    private final int[] cumulativeWeights;
+
+    public LoadGenerator(WebClient webClient, LoadTestSettings settings) {
+        this.webClient = webClient;
+        this.settings = settings;
+
+        var mix = settings.getMix();
+        this.operations = mix.keySet().toArray(new LoadOperation[0]);
+        this.cumulativeWeights = new int[operations.length];
+        var total = 0;
+        for (var i = 0; i < operations.length; i++) {
+            total += mix.get(operations[i]);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    public void seed() {
+        logger.info("Seeding {} starships", settings.getSeedStarships());
+        Flux.range(0, settings.getSeedStarships())
+                .flatMap(i -> LoadOperation.WRITE.execute(webClient), settings.getConcurrency())
+                .blockLast();
+    }
+
+    public Result run(Duration duration) {
+        var stats = new EnumMap<LoadOperation, OperationStats>(LoadOperation.class);
+        for (var operation : operations) {
+            stats.put(operation, new OperationStats());
+        }
+
+        logger.info("Running {} load for {}", settings.isOpenLoop() ? "open-loop" : "closed-loop", duration);
+        var start = System.nanoTime();
+        if (settings.isOpenLoop()) {
+            runOpenLoop(duration, stats);
+        } else {
+            runClosedLoop(duration, stats);
+        }
+        var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        return new Result(elapsed, stats);
+    }
+
+    // request charge per operation is measured one operation at a time, so every charge can be attributed
+    public Map<LoadOperation, Double> calibrate(DoubleSupplier requestChargeReset) {
+        var requestCharges = new EnumMap<LoadOperation, Double>(LoadOperation.class);
+        for (var operation : operations) {
+            requestChargeReset.getAsDouble();
+            Flux.range(0, settings.getCalibrationOperations())
+                    .concatMap(i -> operation.execute(webClient))
+                    .blockLast();
+            requestCharges.put(operation, requestChargeReset.getAsDouble() / settings.getCalibrationOperations());
+        }
+        return requestCharges;
+    }
+
+    private void runOpenLoop(Duration duration, Map<LoadOperation, OperationStats> stats) {
+        var interval = Duration.ofNanos(1_000_000_000L / settings.getArrivalRate());
+        var arrivals = duration.toNanos() / interval.toNanos();
+        var start = System.nanoTime();
+
+        // latency is measured from the intended arrival time, so a stalled service cannot hide its queueing delay;
+        // in-flight requests are not bounded, otherwise a stalled service would slow down the arrivals
+        Flux.interval(Duration.ZERO, interval)
+                .take(arrivals)
+                .flatMap(arrival -> execute(nextOperation(), start + arrival * interval.toNanos(), stats), Integer.MAX_VALUE)
+                .blockLast();
+    }
+
+    private void runClosedLoop(Duration duration, Map<LoadOperation, OperationStats> stats) {
+        var deadline = System.nanoTime() + duration.toNanos();
+
+        Flux.range(0, settings.getConcurrency())
+                .flatMap(worker -> Mono.defer(() -> execute(nextOperation(), System.nanoTime(), stats))
+                        .repeat(() -> System.nanoTime() < deadline), settings.getConcurrency())
+                .blockLast();
+    }
+
+    private Mono<Void> execute(LoadOperation operation, long startNanos, Map<LoadOperation, OperationStats> stats) {
+        return operation.execute(webClient)
+                .onErrorResume(ex -> {
+                    logger.debug("{} failed", operation, ex);
+                    return Mono.just(-1);
+                })
+                .doOnNext(status -> stats.get(operation).record(System.nanoTime() - startNanos, status))
+                .then();
+    }
+
+    private LoadOperation nextOperation() {
+        var value = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (var i = 0; i < cumulativeWeights.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        throw new IllegalStateException("No operation for weight " + value);
+    }
+
+    public static class Result {
+
+        private final Duration elapsed;
+        private final Map<LoadOperation, OperationStats> stats;
+
+        public Result(Duration elapsed, Map<LoadOperation, OperationStats> stats) {
+            this.elapsed = elapsed;
+            this.stats = stats;
+        }
+
+        public Duration getElapsed() {
+            return elapsed;
+        }
+
+        public Map<LoadOperation, OperationStats> getStats() {
+            return stats;
+        }
+
+        public long getCount() {
+            return stats.values().stream().mapToLong(OperationStats::getCount).sum();
+        }
+
+        public long getErrors() {
+            return stats.values().stream().mapToLong(OperationStats::getErrors).sum();
+        }
+
+        public double getErrorRate() {
+            return getCount() == 0 ? 0 : (double) getErrors() / getCount();
+        }
+    }
+}
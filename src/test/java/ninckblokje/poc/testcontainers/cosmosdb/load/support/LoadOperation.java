@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.load.support;
+
+import ninckblokje.poc.testcontainers.cosmosdb.model.Franchise;
+import ninckblokje.poc.testcontainers.cosmosdb.model.Starship;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+
+public enum LoadOperation {
+
+    READ {
+        @Override
+        public Mono<Integer> execute(WebClient webClient) {
+            return exchange(webClient.get().uri("/api/starship/{franchise}", randomFranchise()));
+        }
+    },
+    WRITE {
+        @Override
+        public Mono<Integer> execute(WebClient webClient) {
+            var number = ThreadLocalRandom.current().nextInt(1_000_000);
+            var starship = new Starship(randomFranchise(), "Load", "Load " + number, "NCC-" + number);
+            return exchange(webClient.post().uri("/api/starship").contentType(APPLICATION_JSON).bodyValue(starship));
+        }
+    },
+    SCAN {
+        @Override
+        public Mono<Integer> execute(WebClient webClient) {
+            return exchange(webClient.get().uri("/api/starship"));
+        }
+    };
+
+    public abstract Mono<Integer> execute(WebClient webClient);
+
+    private static Mono<Integer> exchange(WebClient.RequestHeadersSpec<?> request) {
+        return request.exchangeToMono(response -> response.releaseBody().thenReturn(response.rawStatusCode()));
+    }
+
+    private static Franchise randomFranchise() {
+        var franchises = Franchise.values();
+        return franchises[ThreadLocalRandom.current().nextInt(franchises.length)];
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.load.support;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+
+import static java.time.ZoneOffset.UTC;
+
+public class LoadTestReport {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTestReport.class);
+
+    private static final DateTimeFormatter fileTimestamp = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(UTC);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final String target;
+    private final Instant startedAt;
+    private final LoadTestSettings settings;
+    private final LoadGenerator.Result result;
+    private final Double requestCharge;
+    private final Map<LoadOperation, Double> requestChargePerOperation;
+
+    // the request charges are null when the target does not report them
+    public LoadTestReport(String target, Instant startedAt, LoadTestSettings settings, LoadGenerator.Result result,
+                          Double requestCharge, Map<LoadOperation, Double> requestChargePerOperation) {
+        this.target = target;
+        this.startedAt = startedAt;
+        this.settings = settings;
+        this.result = result;
+        this.requestCharge = requestCharge;
+        this.requestChargePerOperation = requestChargePerOperation;
+    }
+
+    public ObjectNode toJson() {
+        var seconds = result.getElapsed().toNanos() / 1_000_000_000.0;
+
+        var json = objectMapper.createObjectNode();
+        json.put("target", target);
+        json.put("startedAt", startedAt.toString());
+        json.set("settings", objectMapper.valueToTree(settings.toMap()));
+        json.put("elapsedSeconds", seconds);
+        json.put("operations", result.getCount());
+        json.put("throughput", result.getCount() / seconds);
+        json.put("errorRate", result.getErrorRate());
+        json.put("requestCharge", requestCharge);
+        json.put("requestChargePerSecond", requestCharge == null ? null : requestCharge / seconds);
+
+        var operations = json.putObject("perOperation");
+        result.getStats().forEach((operation, stats) -> {
+            var count = Math.max(1, stats.getCount());
+            var node = operations.putObject(operation.name().toLowerCase());
+            node.put("count", stats.getCount());
+            node.put("throughput", stats.getCount() / seconds);
+            node.put("errorRate", (double) stats.getErrors() / count);
+            node.put("throttleRate", (double) stats.getThrottled() / count);
+            node.put("requestCharge", requestChargePerOperation.get(operation));
+
+            var latency = node.putObject("latencyMillis");
+            latency.put("p50", stats.getLatencyMillis(50));
+            latency.put("p99", stats.getLatencyMillis(99));
+            latency.put("p999", stats.getLatencyMillis(99.9));
+            latency.put("mean", stats.getMeanLatencyMillis());
+            latency.put("max", stats.getMaxLatencyMillis());
+        });
+        return json;
+    }
+
+    public Path write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        var file = directory.resolve(String.format("%s-%s.json", fileTimestamp.format(startedAt), target));
+
+        var json = toJson();
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), json);
+        logger.info("Load test results written to {}:\n{}", file, objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(json));
+        return file;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.load.support;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class LoadTestSettings {
+
+    private final Duration warmup;
+    private final Duration duration;
+    private final int arrivalRate;
+    private final int concurrency;
+    private final Map<LoadOperation, Integer> mix;
+    private final int seedStarships;
+    private final int calibrationOperations;
+    private final double maxErrorRate;
+    private final Path resultsDirectory;
+
+    public LoadTestSettings(Duration warmup, Duration duration, int arrivalRate, int concurrency, Map<LoadOperation, Integer> mix,
+                            int seedStarships, int calibrationOperations, double maxErrorRate, Path resultsDirectory) {
+        if (mix.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("Operation mix " + mix + " does not contain any operation");
+        }
+
+        this.warmup = warmup;
+        this.duration = duration;
+        this.arrivalRate = arrivalRate;
+        this.concurrency = concurrency;
+        this.mix = mix;
+        this.seedStarships = seedStarships;
+        this.calibrationOperations = calibrationOperations;
+        this.maxErrorRate = maxErrorRate;
+        this.resultsDirectory = resultsDirectory;
+    }
+
+    public static LoadTestSettings fromSystemProperties() {
+        return new LoadTestSettings(
+                Duration.parse(System.getProperty("loadtest.warmup", "PT10S")),
+                Duration.parse(System.getProperty("loadtest.duration", "PT30S")),
+                Integer.getInteger("loadtest.rate", 0),
+                Integer.getInteger("loadtest.concurrency", 16),
+                parseMix(System.getProperty("loadtest.mix", "read=70,write=20,scan=10")),
+                Integer.getInteger("loadtest.seed-starships", 100),
+                Integer.getInteger("loadtest.calibration-operations", 20),
+                Double.parseDouble(System.getProperty("loadtest.max-error-rate", "0.01")),
+                Path.of(System.getProperty("loadtest.results-dir", "target/load-test"))
+        );
+    }
+
+    static Map<LoadOperation, Integer> parseMix(String mix) {
+        var weights = new EnumMap<LoadOperation, Integer>(LoadOperation.class);
+        for (var entry : mix.split(",")) {
+            var parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid operation mix entry '" + entry + "', expected <operation>=<weight>");
+            }
+            weights.put(LoadOperation.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+
+    public boolean isOpenLoop() {
+        return arrivalRate > 0;
+    }
+
+    public Duration getWarmup() {
+        return warmup;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public int getArrivalRate() {
+        return arrivalRate;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public Map<LoadOperation, Integer> getMix() {
+        return mix;
+    }
+
+    public int getSeedStarships() {
+        return seedStarships;
+    }
+
+    public int getCalibrationOperations() {
+        return calibrationOperations;
+    }
+
+    public double getMaxErrorRate() {
+        return maxErrorRate;
+    }
+
+    public Path getResultsDirectory() {
+        return resultsDirectory;
+    }
+
+    public Map<String, Object> toMap() {
+        var map = new LinkedHashMap<String, Object>();
+        map.put("warmup", warmup.toString());
+        map.put("duration", duration.toString());
+        map.put("mode", isOpenLoop() ? "open-loop" : "closed-loop");
+        map.put("arrivalRate", arrivalRate);
+        map.put("concurrency", concurrency);
+        map.put("mix", mix);
+        map.put("seedStarships", seedStarships);
+        return map;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.load.support;
+
+import ninckblokje.poc.testcontainers.cosmosdb.monitoring.QueryCostAnalyzer;
+
+import java.util.Map;
+
+// reads the request charge of the item responses and query pages the repository records for the query cost analysis
+public class RequestChargeRecorder {
+
+    private final QueryCostAnalyzer queryCostAnalyzer;
+
+    public RequestChargeRecorder(QueryCostAnalyzer queryCostAnalyzer) {
+        if (!queryCostAnalyzer.isEnabled()) {
+            throw new IllegalStateException("Recording the request charge needs starship.query-cost.enabled=true");
+        }
+        this.queryCostAnalyzer = queryCostAnalyzer;
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized double reset() {
+        // every operation is counted once per partition key, partition keys above the tracked maximum are counted as other
+        var partitions = (Map<String, Map<String, Object>>) queryCostAnalyzer.report(Integer.MAX_VALUE).get("partitions");
+        queryCostAnalyzer.reset();
+
+        return partitions.values().stream()
+                .mapToDouble(stats -> (double) stats.get("requestCharge"))
+                .sum();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.monitoring;
+
+import com.azure.cosmos.CosmosException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryCostAnalyzerTest {
+
+    @Test
+    public void testNormalize() {
+        assertEquals("SELECT * FROM c WHERE c.name = ? AND c.count > ?",
+                QueryCostAnalyzer.normalize("SELECT *  FROM c\nWHERE c.name = 'Enterprise' AND c.count > 42"));
+        assertEquals("SELECT * FROM c WHERE c.franchise = @franchise",
+                QueryCostAnalyzer.normalize("SELECT * FROM c WHERE c.franchise = @franchise"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testReport() {
+        var analyzer = new QueryCostAnalyzer(true, false, 2);
+        record(analyzer, "READ ITEM", "STAR_TREK", 1);
+        record(analyzer, "READ ITEM", "STAR_WARS", 5);
+        record(analyzer, "CREATE ITEM", "BABYLON_5", 10);
+
+        var partitions = (Map<String, Map<String, Object>>) analyzer.report(10).get("partitions");
+        assertArrayEquals(new String[]{QueryCostAnalyzer.OTHER, "STAR_WARS", "STAR_TREK"}, partitions.keySet().toArray());
+        assertEquals(10.0, partitions.get(QueryCostAnalyzer.OTHER).get("requestCharge"));
+
+        var top = (Map<String, Map<String, Object>>) analyzer.report(1).get("partitions");
+        assertEquals(1, top.size());
+
+        assertThrows(IllegalArgumentException.class, () -> analyzer.report(-1));
+    }
+
+    @Test
+    public void testReportWhileRecording() {
+        var analyzer = new QueryCostAnalyzer(true, false, 1000);
+        var running = new AtomicBoolean(true);
+
+        var recorder = CompletableFuture.runAsync(() -> {
+            while (running.get()) {
+                var random = ThreadLocalRandom.current();
+                record(analyzer, "READ ITEM", "partition-" + random.nextInt(500), random.nextDouble(10));
+            }
+        });
+
+        try {
+            for (var i = 0; i < 200; i++) {
+                assertNotNull(analyzer.report(10));
+            }
+        } finally {
+            running.set(false);
+            recorder.join();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFailedRequests() {
+        var analyzer = new QueryCostAnalyzer(true, false, 1000);
+
+        var throttled = analyzer.startOperation("READ ITEM", "STAR_TREK");
+        throttled.error(new CosmosException(429, "Request rate is large", Map.of("x-ms-request-charge", "2.5"), null) {});
+        throttled.complete();
+
+        // a cancelled query keeps the request charge of the pages read so far
+        var cancelled = analyzer.startQuery("SELECT * FROM c WHERE c.franchise = @franchise", "STAR_TREK");
+        cancelled.response(3);
+        cancelled.complete();
+
+        var partitions = (Map<String, Map<String, Object>>) analyzer.report(10).get("partitions");
+        assertEquals(2L, partitions.get("STAR_TREK").get("requests"));
+        assertEquals(1L, partitions.get("STAR_TREK").get("throttledRequests"));
+        assertEquals(5.5, partitions.get("STAR_TREK").get("requestCharge"));
+
+        var queryShapes = (Map<String, Map<String, Object>>) analyzer.report(10).get("queryShapes");
+        assertEquals(1L, queryShapes.get("READ ITEM").get("throttledRequests"));
+        assertEquals(0L, queryShapes.get("SELECT * FROM c WHERE c.franchise = @franchise").get("throttledRequests"));
+    }
+
+    @Test
+    public void testDisabled() {
+        var analyzer = new QueryCostAnalyzer(false, true, 1000);
+        record(analyzer, "READ ITEM", "STAR_TREK", 1);
+
+        assertFalse(analyzer.isQueryMetricsEnabled());
+        assertEquals(Map.of(), analyzer.report(10).get("partitions"));
+
+        // nothing is normalized or allocated per request
+        assertSame(analyzer.startQuery("SELECT * FROM c WHERE c.name = 'Enterprise'", null), analyzer.startOperation("READ ITEM", "STAR_TREK"));
+    }
+
+    private static void record(QueryCostAnalyzer analyzer, String operation, String partitionKey, double requestCharge) {
+        var recording = analyzer.startOperation(operation, partitionKey);
+        recording.response(requestCharge);
+        recording.complete();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.monitoring;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SchedulerMetricsTest {
+
+    @Test
+    public void testMeters() throws InterruptedException {
+        var meterRegistry = new SimpleMeterRegistry();
+        var globalRegistry = new SimpleMeterRegistry();
+        Metrics.addRegistry(globalRegistry);
+
+        var schedulerMetrics = new SchedulerMetrics(meterRegistry, true, Duration.ofMillis(10));
+        var scheduler = Schedulers.newParallel("scheduler-metrics-test");
+        try {
+            schedulerMetrics.postConstruct();
+
+            assertFalse(meterRegistry.find("eventloop.lag").timers().isEmpty());
+            assertFalse(meterRegistry.find("eventloop.pending.tasks").gauges().isEmpty());
+
+            Mono.just("probe").subscribeOn(scheduler).block(Duration.ofSeconds(10));
+            assertFalse(globalRegistry.find("executor.completed").meters().isEmpty());
+            assertFalse(globalRegistry.find("executor.queued").meters().isEmpty());
+
+            // the probes run on the event loops and record their lag
+            var deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (meterRegistry.find("eventloop.lag").timers().stream().allMatch(timer -> timer.count() == 0) && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(meterRegistry.find("eventloop.lag").timers().stream().anyMatch(timer -> timer.count() > 0));
+        } finally {
+            schedulerMetrics.preDestroy();
+            scheduler.dispose();
+            Schedulers.disableMetrics();
+            Metrics.removeRegistry(globalRegistry);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.session;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CosmosSessionTest {
+
+    private final List<String> containerNames = List.of("starships-1", "starships-2");
+
+    @Test
+    public void testContainerSessionTokens() {
+        var session = new CosmosSession("starships-1=0:-1#12;starships-2=0:1#100#1=20#2=30", containerNames);
+
+        assertEquals("0:-1#12", session.getRequestSessionToken("starships-1"));
+        assertEquals("0:1#100#1=20#2=30", session.getRequestSessionToken("starships-2"));
+    }
+
+    @Test
+    public void testPlainMultiRegionSessionToken() {
+        var session = new CosmosSession("0:1#100#1=20#2=30", containerNames);
+
+        assertEquals("0:1#100#1=20#2=30", session.getRequestSessionToken("starships-1"));
+        assertEquals("0:1#100#1=20#2=30", session.getRequestSessionToken("starships-2"));
+    }
+
+    @Test
+    public void testResponseSessionTokens() {
+        var session = new CosmosSession(null, containerNames);
+        assertNull(session.getRequestSessionToken("starships-1"));
+        assertNull(session.getResponseSessionToken());
+
+        session.setResponseSessionToken("starships-2", "0:1#100#1=20#2=30");
+        session.setResponseSessionToken("starships-1", "0:-1#12");
+        assertEquals("starships-1=0:-1#12;starships-2=0:1#100#1=20#2=30", session.getResponseSessionToken());
+
+        // the response header can be sent back as is
+        var next = new CosmosSession(session.getResponseSessionToken(), containerNames);
+        assertEquals("0:1#100#1=20#2=30", next.getRequestSessionToken("starships-2"));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2021, ninckblokje
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ninckblokje.poc.testcontainers.cosmosdb.sharding;
+
+import ninckblokje.poc.testcontainers.cosmosdb.model.Franchise;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static ninckblokje.poc.testcontainers.cosmosdb.model.Franchise.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardRouterTest {
+
+    private final List<String> containerNames = List.of("starships-1", "starships-2", "starships-3");
+
+    @Test
+    public void testFranchiseMapping() {
+        var shardMap = new StarshipShardMap(containerNames, List.of("STAR_TREK=starships-3", "STAR_WARS = starships-1"));
+
+        assertEquals("starships-3", shardMap.containerNameOf(STAR_TREK));
+        assertEquals("starships-1", shardMap.containerNameOf(STAR_WARS));
+        assertEquals("starships-1", shardMap.containerNameOf("STAR_WARS"));
+    }
+
+    @Test
+    public void testHashRange() {
+        var shardMap = new StarshipShardMap(containerNames, List.of());
+
+        var partitionKeys = new ArrayList<String>();
+        for (var i = 0; i < 3000; i++) {
+            partitionKeys.add("partition-" + i);
+        }
+
+        for (var containerName : containerNames) {
+            var count = partitionKeys.stream().filter(partitionKey -> containerName.equals(shardMap.containerNameOf(partitionKey))).count();
+            assertTrue(count > 500, containerName + " only owns " + count + " partition keys");
+        }
+        for (var franchise : Franchise.values()) {
+            assertEquals(shardMap.containerNameOf(franchise.name()), shardMap.containerNameOf(franchise));
+        }
+    }
+
+    @Test
+    public void testInvalidShardMap() {
+        assertThrows(IllegalArgumentException.class, () -> new StarshipShardMap(List.of(), List.of()));
+        assertThrows(IllegalArgumentException.class, () -> new StarshipShardMap(List.of("starships", "starships"), List.of()));
+        assertThrows(IllegalArgumentException.class, () -> new StarshipShardMap(containerNames, List.of("STAR_TREK")));
+        assertThrows(IllegalArgumentException.class, () -> new StarshipShardMap(containerNames, List.of("STAR_TREK=starships")));
+        assertThrows(IllegalArgumentException.class, () -> new StarshipShardMap(containerNames, List.of("FIREFLY=starships-1")));
+    }
+
+    @Test
+    public void testRoute() {
+        var shardMap = new StarshipShardMap(containerNames, List.of("BABYLON_5=starships-2"));
+        var router = new ShardRouter<>(shardMap, containerName -> containerName);
+
+        assertEquals(containerNames, new ArrayList<>(router.getShards()));
+        assertEquals("starships-2", router.route(BABYLON_5));
+        assertEquals(shardMap.containerNameOf("partition-1"), router.route("partition-1"));
+    }
+
+    @Test
+    public void testScatterGather() {
+        var shardMap = new StarshipShardMap(containerNames, List.of());
+        var router = new ShardRouter<>(shardMap, containerName -> List.of(containerName + "-a", containerName + "-c", containerName + "-b"));
+
+        var results = router.scatterGather((values, ordered) -> Flux.fromStream(ordered ? values.stream().sorted() : values.stream()), Comparator.naturalOrder())
+                .collectList()
+                .block();
+
+        assertEquals(List.of(
+                "starships-1-a", "starships-1-b", "starships-1-c",
+                "starships-2-a", "starships-2-b", "starships-2-c",
+                "starships-3-a", "starships-3-b", "starships-3-c"
+        ), results);
+    }
+
+    @Test
+    public void testScatterGatherSingleShard() {
+        var shardMap = new StarshipShardMap(List.of("starships"), List.of());
+        var router = new ShardRouter<>(shardMap, containerName -> List.of("c", "a", "b"));
+
+        // nothing is merged, so the shard is not asked for ordered results
+        var results = router.scatterGather((values, ordered) -> Flux.fromStream(ordered ? values.stream().sorted() : values.stream()), Comparator.naturalOrder())
+                .collectList()
+                .block();
+
+        assertEquals(List.of("c", "a", "b"), results);
+    }
+}